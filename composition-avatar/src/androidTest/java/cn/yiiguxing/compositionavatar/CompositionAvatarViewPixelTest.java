@@ -0,0 +1,181 @@
+package cn.yiiguxing.compositionavatar;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapShader;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.ColorFilter;
+import android.graphics.Paint;
+import android.graphics.PixelFormat;
+import android.graphics.Rect;
+import android.graphics.Shader;
+import android.graphics.drawable.Drawable;
+import android.support.annotation.NonNull;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+import android.view.View;
+
+import cn.yiiguxing.compositionavatar.CompositionAvatarView.FitType;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 比较drawable缓存绘制路径与CLEAR混合模式绘制路径的像素输出。
+ * 需要真实的渲染，所以在设备上运行。
+ * <p>
+ * 以CLEAR混合模式路径的实时输出作为基准，而不是保存在仓库中的基准图像：
+ * 圆形边缘的抗锯齿结果随设备和系统版本而不同，固定的基准图像只适用于生成它的设备。
+ * 两条路径在同一设备上使用相同的绘制操作，除抗锯齿边缘外输出应完全相同。
+ */
+@RunWith(AndroidJUnit4.class)
+public class CompositionAvatarViewPixelTest {
+
+    /**
+     * 宽高之差为奇数时，内容居中的偏移是半个像素。
+     */
+    private static final int[][] VIEW_SIZES = {{120, 120}, {121, 120}, {120, 121}};
+    private static final float[] GAPS = {0f, CompositionAvatarView.DEFAULT_GAP, 1f};
+
+    /**
+     * 只允许圆形边缘的抗锯齿误差。图像内容是逐像素变化的棋盘格，
+     * 若缓存位图在小数位置上被重新采样，几乎所有像素都会不同。
+     */
+    private static final int CHANNEL_TOLERANCE = 8;
+    private static final float MAX_DIFFERENT_PIXEL_RATIO = 0.002f;
+
+    @Test
+    public void cachedPathMatchesLayerPath() {
+        for (int n = 1; n <= CompositionAvatarView.MAX_DRAWABLE_COUNT; n++) {
+            Drawable[] drawables = createDrawables(n);
+            for (int[] size : VIEW_SIZES) {
+                for (float gap : GAPS) {
+                    for (FitType fitType : FitType.values()) {
+                        Bitmap expected = render(drawables, size, gap, fitType, false);
+                        Bitmap actual = render(drawables, size, gap, fitType, true);
+                        assertSimilar("N=" + n + ", size=" + size[0] + "x" + size[1]
+                                + ", gap=" + gap + ", fitType=" + fitType, expected, actual);
+                        expected.recycle();
+                        actual.recycle();
+                    }
+                }
+            }
+        }
+    }
+
+    private static Drawable[] createDrawables(int n) {
+        Drawable[] drawables = new Drawable[n];
+        for (int i = 0; i < n; i++) {
+            // 宽高不同，使各种FitType的差异都能体现在像素上。
+            drawables[i] = new PatternDrawable(Color.HSVToColor(new float[]{i * 60f, 1f, 1f}),
+                    400 + i * 40, 300);
+        }
+        return drawables;
+    }
+
+    private static Bitmap render(Drawable[] drawables, int[] size, float gap,
+                                 FitType fitType, boolean cacheEnabled) {
+        CompositionAvatarView view =
+                new CompositionAvatarView(InstrumentationRegistry.getTargetContext());
+        view.setGap(gap);
+        view.setDrawableFitType(fitType);
+        view.setDrawableCacheEnabled(cacheEnabled);
+        for (Drawable drawable : drawables) {
+            view.addDrawable(drawable);
+        }
+
+        final int width = size[0];
+        final int height = size[1];
+        view.measure(View.MeasureSpec.makeMeasureSpec(width, View.MeasureSpec.EXACTLY),
+                View.MeasureSpec.makeMeasureSpec(height, View.MeasureSpec.EXACTLY));
+        view.layout(0, 0, width, height);
+
+        Bitmap bitmap = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+        view.draw(new Canvas(bitmap));
+        view.clearDrawable();
+        return bitmap;
+    }
+
+    private static void assertSimilar(String name, Bitmap expected, Bitmap actual) {
+        final int width = expected.getWidth();
+        final int height = expected.getHeight();
+        final int[] expectedPixels = new int[width * height];
+        final int[] actualPixels = new int[width * height];
+        expected.getPixels(expectedPixels, 0, width, 0, 0, width, height);
+        actual.getPixels(actualPixels, 0, width, 0, 0, width, height);
+
+        int differentPixels = 0;
+        for (int i = 0; i < expectedPixels.length; i++) {
+            int e = expectedPixels[i];
+            int a = actualPixels[i];
+            for (int shift = 0; shift < 32; shift += 8) {
+                int diff = Math.abs(((e >>> shift) & 0xff) - ((a >>> shift) & 0xff));
+                if (diff > CHANNEL_TOLERANCE) {
+                    differentPixels++;
+                    break;
+                }
+            }
+        }
+
+        float differentRatio = differentPixels / (float) expectedPixels.length;
+        assertTrue(name + ": different pixel ratio " + differentRatio,
+                differentRatio <= MAX_DIFFERENT_PIXEL_RATIO);
+    }
+
+    /**
+     * 1像素的棋盘格，以及标记边界位置的硬边条纹。
+     */
+    private static class PatternDrawable extends Drawable {
+        private final Paint mCheckerPaint = new Paint();
+        private final Paint mStripePaint = new Paint();
+        private final int mWidth;
+        private final int mHeight;
+
+        PatternDrawable(int color, int width, int height) {
+            Bitmap checker = Bitmap.createBitmap(2, 2, Bitmap.Config.ARGB_8888);
+            checker.setPixels(new int[]{color, Color.BLACK, Color.BLACK, color}, 0, 2, 0, 0, 2, 2);
+            mCheckerPaint.setShader(new BitmapShader(checker, Shader.TileMode.REPEAT,
+                    Shader.TileMode.REPEAT));
+            mStripePaint.setColor(Color.WHITE);
+            mWidth = width;
+            mHeight = height;
+        }
+
+        @Override
+        public void draw(@NonNull Canvas canvas) {
+            final Rect bounds = getBounds();
+            canvas.drawRect(bounds, mCheckerPaint);
+            final int third = bounds.width() / 3;
+            canvas.drawRect(bounds.left + third, bounds.top, bounds.left + third + 3,
+                    bounds.bottom, mStripePaint);
+            canvas.drawRect(bounds.left, bounds.top + third, bounds.right,
+                    bounds.top + third + 2, mStripePaint);
+        }
+
+        @Override
+        public int getIntrinsicWidth() {
+            return mWidth;
+        }
+
+        @Override
+        public int getIntrinsicHeight() {
+            return mHeight;
+        }
+
+        @Override
+        public void setAlpha(int alpha) {
+        }
+
+        @Override
+        public void setColorFilter(ColorFilter colorFilter) {
+        }
+
+        @Override
+        public int getOpacity() {
+            return PixelFormat.OPAQUE;
+        }
+    }
+
+}
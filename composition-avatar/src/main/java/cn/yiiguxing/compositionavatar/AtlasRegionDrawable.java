@@ -0,0 +1,67 @@
+package cn.yiiguxing.compositionavatar;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.ColorFilter;
+import android.graphics.Paint;
+import android.graphics.PixelFormat;
+import android.graphics.Rect;
+import android.graphics.drawable.Drawable;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+/**
+ * 绘制图集（Atlas）位图中某一区域的Drawable. 同一图集的所有区域共用一张位图。
+ */
+final class AtlasRegionDrawable extends Drawable {
+
+    private final Bitmap mAtlas;
+    private final Rect mRegion;
+    private final Paint mPaint = new Paint(Paint.FILTER_BITMAP_FLAG | Paint.DITHER_FLAG);
+
+    AtlasRegionDrawable(@NonNull Bitmap atlas, @NonNull Rect region) {
+        mAtlas = atlas;
+        mRegion = new Rect(region);
+        if (!mRegion.intersect(0, 0, atlas.getWidth(), atlas.getHeight())) {
+            mRegion.setEmpty();
+        }
+    }
+
+    @Override
+    public void draw(@NonNull Canvas canvas) {
+        if (!mRegion.isEmpty() && !mAtlas.isRecycled()) {
+            canvas.drawBitmap(mAtlas, mRegion, getBounds(), mPaint);
+        }
+    }
+
+    @Override
+    public int getIntrinsicWidth() {
+        return mRegion.width();
+    }
+
+    @Override
+    public int getIntrinsicHeight() {
+        return mRegion.height();
+    }
+
+    @Override
+    public void setAlpha(int alpha) {
+        if (mPaint.getAlpha() != alpha) {
+            mPaint.setAlpha(alpha);
+            invalidateSelf();
+        }
+    }
+
+    @Override
+    public void setColorFilter(@Nullable ColorFilter colorFilter) {
+        mPaint.setColorFilter(colorFilter);
+        invalidateSelf();
+    }
+
+    @Override
+    public int getOpacity() {
+        return mAtlas.hasAlpha() || mPaint.getAlpha() < 255
+                ? PixelFormat.TRANSLUCENT : PixelFormat.OPAQUE;
+    }
+
+}
@@ -0,0 +1,152 @@
+package cn.yiiguxing.compositionavatar;
+
+import android.graphics.Bitmap;
+import android.support.annotation.ColorInt;
+import android.support.annotation.NonNull;
+
+/**
+ * BlurHash解码器。BlurHash是图像的一种紧凑编码（通常只有二三十个字符），
+ * 可以解码为该图像模糊后的预览图。
+ *
+ * @see <a href="https://blurha.sh">BlurHash</a>
+ */
+final class BlurHash {
+
+    private static final String CHARACTERS =
+            "0123456789ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz#$%*+,-.:;=?@[]^_{|}~";
+
+    private BlurHash() {
+    }
+
+    /**
+     * 检查BlurHash是否有效。
+     *
+     * @throws IllegalArgumentException 如果BlurHash无效
+     */
+    static void checkValid(@NonNull String blurHash) {
+        if (blurHash.length() < 6) {
+            throw new IllegalArgumentException("Invalid BlurHash: " + blurHash);
+        }
+
+        final int sizeFlag = decode83(blurHash, 0, 1);
+        final int numY = sizeFlag / 9 + 1;
+        final int numX = sizeFlag % 9 + 1;
+        if (blurHash.length() != 4 + 2 * numX * numY) {
+            throw new IllegalArgumentException("Invalid BlurHash length: " + blurHash);
+        }
+    }
+
+    /**
+     * @return 图像的平均颜色
+     * @throws IllegalArgumentException 如果BlurHash无效
+     */
+    @ColorInt
+    static int averageColor(@NonNull String blurHash) {
+        checkValid(blurHash);
+        return 0xff000000 | decode83(blurHash, 2, 6);
+    }
+
+    /**
+     * 将BlurHash解码为位图。
+     *
+     * @param blurHash the BlurHash.
+     * @param width    位图宽度
+     * @param height   位图高度
+     * @return the bitmap.
+     * @throws IllegalArgumentException 如果BlurHash无效
+     */
+    @NonNull
+    static Bitmap decode(@NonNull String blurHash, int width, int height) {
+        checkValid(blurHash);
+
+        final int sizeFlag = decode83(blurHash, 0, 1);
+        final int numY = sizeFlag / 9 + 1;
+        final int numX = sizeFlag % 9 + 1;
+        final float maxAc = (decode83(blurHash, 1, 2) + 1) / 166f;
+
+        final int numColors = numX * numY;
+        final float[] colors = new float[numColors * 3];
+        decodeDc(decode83(blurHash, 2, 6), colors);
+        for (int i = 1; i < numColors; i++) {
+            decodeAc(decode83(blurHash, 4 + i * 2, 6 + i * 2), maxAc, colors, i * 3);
+        }
+
+        final float[] cosX = new float[width * numX];
+        for (int x = 0; x < width; x++) {
+            for (int i = 0; i < numX; i++) {
+                cosX[x * numX + i] = (float) Math.cos(Math.PI * x * i / width);
+            }
+        }
+        final float[] cosY = new float[height * numY];
+        for (int y = 0; y < height; y++) {
+            for (int j = 0; j < numY; j++) {
+                cosY[y * numY + j] = (float) Math.cos(Math.PI * y * j / height);
+            }
+        }
+
+        final int[] pixels = new int[width * height];
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                float r = 0, g = 0, b = 0;
+                for (int j = 0; j < numY; j++) {
+                    final float cy = cosY[y * numY + j];
+                    for (int i = 0; i < numX; i++) {
+                        final float basis = cosX[x * numX + i] * cy;
+                        final int index = (i + j * numX) * 3;
+                        r += colors[index] * basis;
+                        g += colors[index + 1] * basis;
+                        b += colors[index + 2] * basis;
+                    }
+                }
+
+                pixels[x + y * width] = 0xff000000 | (linearToSrgb(r) << 16)
+                        | (linearToSrgb(g) << 8) | linearToSrgb(b);
+            }
+        }
+
+        return Bitmap.createBitmap(pixels, width, height, Bitmap.Config.ARGB_8888);
+    }
+
+    private static int decode83(String str, int from, int to) {
+        int result = 0;
+        for (int i = from; i < to; i++) {
+            int index = CHARACTERS.indexOf(str.charAt(i));
+            if (index < 0) {
+                throw new IllegalArgumentException("Invalid BlurHash character: " + str);
+            }
+            result = result * 83 + index;
+        }
+
+        return result;
+    }
+
+    private static void decodeDc(int value, float[] colors) {
+        colors[0] = srgbToLinear(value >> 16);
+        colors[1] = srgbToLinear((value >> 8) & 0xff);
+        colors[2] = srgbToLinear(value & 0xff);
+    }
+
+    private static void decodeAc(int value, float maxAc, float[] colors, int offset) {
+        colors[offset] = signedPow2((value / (19 * 19) - 9) / 9f) * maxAc;
+        colors[offset + 1] = signedPow2(((value / 19) % 19 - 9) / 9f) * maxAc;
+        colors[offset + 2] = signedPow2((value % 19 - 9) / 9f) * maxAc;
+    }
+
+    private static float signedPow2(float value) {
+        return Math.copySign(value * value, value);
+    }
+
+    private static float srgbToLinear(int value) {
+        float v = value / 255f;
+        return v <= 0.04045f ? v / 12.92f : (float) Math.pow((v + 0.055f) / 1.055f, 2.4f);
+    }
+
+    private static int linearToSrgb(float value) {
+        float v = Math.max(0f, Math.min(value, 1f));
+        if (v <= 0.0031308f) {
+            return (int) (v * 12.92f * 255f + 0.5f);
+        }
+        return (int) ((1.055f * (float) Math.pow(v, 1 / 2.4f) - 0.055f) * 255f + 0.5f);
+    }
+
+}
@@ -0,0 +1,160 @@
+package cn.yiiguxing.compositionavatar;
+
+import android.graphics.Bitmap;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Process;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.util.LruCache;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 在后台线程中解码BlurHash占位图，解码结果保存在所有View共享的内存缓存中。
+ * 除解码外，所有方法都只能在主线程中调用。
+ */
+final class BlurHashLoader {
+
+    /**
+     * 占位图的大小。BlurHash本身只包含很少的细节，很小的位图就足够了。
+     */
+    static final int PLACEHOLDER_SIZE = 32;
+
+    private static final int CACHE_SIZE = 1024 * 1024;
+
+    private static final LruCache<String, Bitmap> sCache =
+            new LruCache<String, Bitmap>(CACHE_SIZE) {
+                @Override
+                protected int sizeOf(String key, Bitmap value) {
+                    return value.getRowBytes() * value.getHeight();
+                }
+            };
+
+    private static final Map<String, List<Callback>> sPendingRequests = new HashMap<>();
+
+    private static final Handler sMainHandler = new Handler(Looper.getMainLooper());
+
+    private static final int POOL_SIZE = 2;
+
+    private static final Executor sExecutor = createExecutor();
+
+    interface Callback {
+        void onLoaded(@NonNull Bitmap bitmap);
+    }
+
+    private BlurHashLoader() {
+    }
+
+    /**
+     * 创建解码线程池：最多{@link #POOL_SIZE}个后台优先级的线程，空闲时线程会被回收。
+     */
+    private static Executor createExecutor() {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(POOL_SIZE, POOL_SIZE,
+                30, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+            private final AtomicInteger mCount = new AtomicInteger(1);
+
+            @Override
+            public Thread newThread(@NonNull final Runnable r) {
+                Thread thread = new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                        r.run();
+                    }
+                }, "BlurHashLoader #" + mCount.getAndIncrement());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    /**
+     * @return 缓存中的占位图，<code>null</code> - 如果未缓存
+     */
+    @Nullable
+    static Bitmap getCached(@NonNull String blurHash) {
+        return sCache.get(blurHash);
+    }
+
+    /**
+     * 解码占位图。相同的BlurHash同时只会解码一次。
+     *
+     * @param blurHash the BlurHash.
+     * @param callback 解码完成后在主线程中回调
+     */
+    static void load(@NonNull final String blurHash, @NonNull Callback callback) {
+        Bitmap cached = sCache.get(blurHash);
+        if (cached != null) {
+            callback.onLoaded(cached);
+            return;
+        }
+
+        List<Callback> callbacks = sPendingRequests.get(blurHash);
+        if (callbacks != null) {
+            callbacks.add(callback);
+            return;
+        }
+
+        callbacks = new ArrayList<>(1);
+        callbacks.add(callback);
+        sPendingRequests.put(blurHash, callbacks);
+
+        sExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                Bitmap bitmap;
+                try {
+                    bitmap = BlurHash.decode(blurHash, PLACEHOLDER_SIZE, PLACEHOLDER_SIZE);
+                } catch (RuntimeException | OutOfMemoryError e) {
+                    bitmap = null;
+                }
+
+                final Bitmap result = bitmap;
+                sMainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        deliver(blurHash, result);
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * 取消回调。解码本身不会被取消，其结果仍会被缓存。
+     *
+     * @param blurHash the BlurHash.
+     * @param callback 通过{@link #load(String, Callback)}传入的回调
+     */
+    static void cancel(@NonNull String blurHash, @NonNull Callback callback) {
+        List<Callback> callbacks = sPendingRequests.get(blurHash);
+        if (callbacks != null) {
+            callbacks.remove(callback);
+        }
+    }
+
+    private static void deliver(String blurHash, @Nullable Bitmap bitmap) {
+        List<Callback> callbacks = sPendingRequests.remove(blurHash);
+        if (bitmap == null || callbacks == null) {
+            return;
+        }
+
+        sCache.put(blurHash, bitmap);
+        for (Callback callback : callbacks) {
+            callback.onLoaded(bitmap);
+        }
+    }
+
+}
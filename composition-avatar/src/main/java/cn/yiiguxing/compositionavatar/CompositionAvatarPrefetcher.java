@@ -0,0 +1,97 @@
+package cn.yiiguxing.compositionavatar;
+
+import android.support.annotation.NonNull;
+import android.view.ViewGroup;
+
+/**
+ * CompositionAvatarView预备器。在View显示之前预先完成其布局，以及生成drawable缓存
+ * （如果启用了{@link CompositionAvatarView#setDrawableCacheEnabled(boolean) drawable缓存}）。
+ * <p>
+ * 在列表（如RecyclerView）中使用时，在Adapter绑定数据、设置完drawable后调用{@link #prefetch}.
+ * RecyclerView会在空闲时间预先创建和绑定即将显示的列表项，这些工作也就随之在空闲时间完成，
+ * 列表项进入屏幕的那一帧只需直接绘制。
+ * <p>
+ * 预备的结果可能被使用，也可能因View的大小或内容改变而被丢弃，
+ * 可通过{@link #getUsedCount()}和{@link #getDiscardedCount()}统计。
+ */
+public class CompositionAvatarPrefetcher {
+
+    private int mUsedCount;
+    private int mDiscardedCount;
+
+    /**
+     * 按View的布局参数所确定的大小进行预备。
+     *
+     * @param view the view.
+     * @return <code>true</code> - 如果完成了预备工作， <code>false</code> - 如果无法确定View的大小
+     * @see #prefetch(CompositionAvatarView, int, int)
+     */
+    public boolean prefetch(@NonNull CompositionAvatarView view) {
+        int width = view.getWidth();
+        int height = view.getHeight();
+
+        final ViewGroup.LayoutParams lp = view.getLayoutParams();
+        if (lp != null) {
+            if (lp.width > 0) {
+                width = lp.width;
+            }
+            if (lp.height > 0) {
+                height = lp.height;
+            }
+
+            // 与CompositionAvatarView#onMeasure一致，宽高中只有一个确定时，另一个与其相同。
+            final int horizontalPadding = view.getPaddingLeft() + view.getPaddingRight();
+            final int verticalPadding = view.getPaddingTop() + view.getPaddingBottom();
+            if (lp.width > 0 && lp.height == ViewGroup.LayoutParams.WRAP_CONTENT) {
+                height = lp.width - horizontalPadding + verticalPadding;
+            } else if (lp.height > 0 && lp.width == ViewGroup.LayoutParams.WRAP_CONTENT) {
+                width = lp.height + horizontalPadding - verticalPadding;
+            }
+        }
+
+        return prefetch(view, width, height);
+    }
+
+    /**
+     * 按给定的大小进行预备。
+     *
+     * @param view   the view.
+     * @param width  View的宽度
+     * @param height View的高度
+     * @return <code>true</code> - 如果完成了预备工作， <code>false</code> - 其他
+     */
+    public boolean prefetch(@NonNull CompositionAvatarView view, int width, int height) {
+        return view.prefetch(width, height, this);
+    }
+
+    /**
+     * @return 预备结果被使用的次数
+     */
+    public int getUsedCount() {
+        return mUsedCount;
+    }
+
+    /**
+     * @return 预备结果被丢弃的次数
+     */
+    public int getDiscardedCount() {
+        return mDiscardedCount;
+    }
+
+    /**
+     * 重置统计数据。
+     */
+    public void resetCounts() {
+        mUsedCount = 0;
+        mDiscardedCount = 0;
+    }
+
+    void onPrefetchUsed() {
+        mUsedCount++;
+    }
+
+    void onPrefetchDiscarded() {
+        mDiscardedCount++;
+    }
+
+}
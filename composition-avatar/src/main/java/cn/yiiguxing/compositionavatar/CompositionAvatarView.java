@@ -1,7 +1,11 @@
 package cn.yiiguxing.compositionavatar;
 
+import android.animation.Animator;
+import android.animation.AnimatorListenerAdapter;
+import android.animation.ValueAnimator;
 import android.content.Context;
 import android.content.res.TypedArray;
+import android.graphics.Bitmap;
 import android.graphics.Canvas;
 import android.graphics.Color;
 import android.graphics.Matrix;
@@ -9,18 +13,25 @@ import android.graphics.Paint;
 import android.graphics.Path;
 import android.graphics.PorterDuff;
 import android.graphics.PorterDuffXfermode;
+import android.graphics.Rect;
 import android.graphics.RectF;
+import android.graphics.drawable.Animatable;
+import android.graphics.drawable.BitmapDrawable;
+import android.graphics.drawable.ColorDrawable;
 import android.graphics.drawable.Drawable;
 import android.os.Build;
+import android.os.Parcel;
+import android.os.Parcelable;
 import android.support.annotation.FloatRange;
 import android.support.annotation.IntRange;
 import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
 import android.util.AttributeSet;
+import android.util.SparseArray;
 import android.view.View;
 
-import java.util.ArrayList;
-import java.util.List;
+import java.lang.ref.WeakReference;
+import java.util.IdentityHashMap;
 
 /**
  * CompositionAvatarView
@@ -31,19 +42,46 @@ public class CompositionAvatarView extends View {
 
     public static final int MAX_DRAWABLE_COUNT = 5;
     public static final float DEFAULT_GAP = 0.25f;
-
-    private final List<DrawableInfo> mDrawables = new ArrayList<>(MAX_DRAWABLE_COUNT);
+    public static final long DEFAULT_TRANSITION_DURATION = 250;
+
+    private final DrawableInfo[] mDrawables = new DrawableInfo[MAX_DRAWABLE_COUNT];
+    // id -> DrawableInfo, 以及drawable -> 其所在位置的数量，与mDrawables保持同步。
+    private final SparseArray<DrawableInfo> mDrawableIds = new SparseArray<>(MAX_DRAWABLE_COUNT);
+    private final IdentityHashMap<Drawable, Integer> mDrawableRefs =
+            new IdentityHashMap<>(MAX_DRAWABLE_COUNT);
+    private int mDrawableCount;
     private final Paint mPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+    private final Paint mCachePaint = new Paint(Paint.FILTER_BITMAP_FLAG);
+    private final Canvas mCacheCanvas = new Canvas();
     private final Matrix mLayoutMatrix = new Matrix();
     private final RectF mTempBounds = new RectF();
     private final float[] mPointsTemp = new float[2];
 
     private int mContentSize;
     private float mSteinerCircleRadius;
-    private float mOffsetY;
+    // 内容在View中的位置（包括布局的纵向偏移），取整到像素，使缓存位图能够1:1绘制到画布上。
+    private int mContentLeft;
+    private int mContentTop;
 
     private FitType mFitType = FitType.CENTER;
     private float mGap = DEFAULT_GAP;
+    private boolean mDrawableCacheEnabled;
+
+    private boolean mTransitionEnabled;
+    private long mTransitionDuration = DEFAULT_TRANSITION_DURATION;
+    private ValueAnimator mTransitionAnimator;
+    private boolean mTransitionStartCaptured;
+    private boolean mRestartingTransition;
+    // 已被移除、但仍在过渡动画中逐渐缩小消失的图像。
+    private final DrawableInfo[] mOutgoingDrawables = new DrawableInfo[MAX_DRAWABLE_COUNT];
+    private int mOutgoingCount;
+
+    private OnRestoreDrawableListener mOnRestoreDrawableListener;
+
+    private CompositionAvatarPrefetcher mPrefetcher;
+    // 最近一次布局所按照的View大小。
+    private int mLayoutWidth;
+    private int mLayoutHeight;
 
     private static final FitType[] sFitTypeArray = {
             FitType.FIT,
@@ -126,6 +164,7 @@ public class CompositionAvatarView extends View {
         gap = Math.max(0f, Math.min(gap, 1f));
         if (mGap != gap) {
             mGap = gap;
+            invalidateDrawableCaches();
             invalidate();
         }
     }
@@ -143,7 +182,7 @@ public class CompositionAvatarView extends View {
      */
     @IntRange(from = 0, to = MAX_DRAWABLE_COUNT)
     public int getNumberOfDrawables() {
-        return mDrawables.size();
+        return mDrawableCount;
     }
 
     /**
@@ -176,9 +215,11 @@ public class CompositionAvatarView extends View {
         }
         if (mFitType != fitType) {
             mFitType = fitType;
-            for (DrawableInfo drawableInfo : mDrawables) {
+            for (int i = 0; i < mDrawableCount; i++) {
+                DrawableInfo drawableInfo = mDrawables[i];
                 updateDrawableBounds(drawableInfo);
             }
+            invalidateDrawableCaches();
             invalidate();
         }
     }
@@ -191,6 +232,79 @@ public class CompositionAvatarView extends View {
         return mFitType;
     }
 
+    /**
+     * 设置是否启用drawable缓存。启用后，每个静态（非{@link Animatable}）drawable
+     * 会按其实际显示大小栅格化为一张已裁剪好的位图，之后每次绘制只需绘制该位图，
+     * 直到drawable、大小、间距或填充类型改变时才重新生成。
+     * <p>
+     * 适用于源图像远大于显示大小的情况，代价是每个drawable额外占用一张小位图的内存。
+     *
+     * @param enabled <code>true</code> - 启用缓存， <code>false</code> - 禁用缓存
+     */
+    public void setDrawableCacheEnabled(boolean enabled) {
+        if (mDrawableCacheEnabled != enabled) {
+            mDrawableCacheEnabled = enabled;
+            if (!enabled) {
+                for (int i = 0; i < mDrawableCount; i++) {
+                    DrawableInfo drawable = mDrawables[i];
+                    drawable.mCache = null;
+                }
+            }
+            invalidateDrawableCaches();
+            invalidate();
+        }
+    }
+
+    /**
+     * @return 是否启用了drawable缓存
+     * @see #setDrawableCacheEnabled(boolean)
+     */
+    public boolean isDrawableCacheEnabled() {
+        return mDrawableCacheEnabled;
+    }
+
+    /**
+     * 设置是否启用过渡动画。启用后，添加或移除drawable时，各图像会从原来的位置和大小
+     * 平滑过渡到新的布局，新添加的图像从其位置逐渐放大出现，被移除的图像在原位置逐渐缩小消失。
+     *
+     * @param enabled <code>true</code> - 启用过渡动画， <code>false</code> - 禁用过渡动画
+     * @see #setTransitionDuration(long)
+     */
+    public void setTransitionEnabled(boolean enabled) {
+        mTransitionEnabled = enabled;
+        if (!enabled) {
+            cancelTransition();
+        }
+    }
+
+    /**
+     * @return 是否启用了过渡动画
+     * @see #setTransitionEnabled(boolean)
+     */
+    public boolean isTransitionEnabled() {
+        return mTransitionEnabled;
+    }
+
+    /**
+     * 设置过渡动画的时长。
+     *
+     * @param duration 时长（毫秒）
+     * @see #setTransitionEnabled(boolean)
+     */
+    public void setTransitionDuration(@IntRange(from = 0) long duration) {
+        if (duration < 0) {
+            throw new IllegalArgumentException("duration < 0");
+        }
+        mTransitionDuration = duration;
+    }
+
+    /**
+     * @return 过渡动画的时长（毫秒）
+     */
+    public long getTransitionDuration() {
+        return mTransitionDuration;
+    }
+
     /**
      * 通过ID获取对应的drawable.
      *
@@ -199,7 +313,13 @@ public class CompositionAvatarView extends View {
      */
     @Nullable
     public Drawable findDrawableById(int id) {
-        for (DrawableInfo drawable : mDrawables) {
+        if (id != NO_ID) {
+            DrawableInfo drawable = mDrawableIds.get(id);
+            return drawable != null ? drawable.mDrawable : null;
+        }
+
+        for (int i = 0; i < mDrawableCount; i++) {
+            DrawableInfo drawable = mDrawables[i];
             if (drawable.mId == id) {
                 return drawable.mDrawable;
             }
@@ -216,31 +336,77 @@ public class CompositionAvatarView extends View {
      */
     @NonNull
     public Drawable getDrawableAt(int index) {
-        return mDrawables.get(index).mDrawable;
+        checkIndex(index);
+        return mDrawables[index].mDrawable;
     }
 
     @Nullable
     private DrawableInfo findAvatarDrawableById(int id) {
-        if (id != NO_ID) {
-            for (DrawableInfo drawable : mDrawables) {
-                if (drawable.mId == id) {
-                    return drawable;
-                }
-            }
+        return id != NO_ID ? mDrawableIds.get(id) : null;
+    }
+
+    private boolean hasSameDrawable(Drawable drawable) {
+        return mDrawableRefs.containsKey(drawable);
+    }
+
+    private void checkIndex(int index) {
+        if (index < 0 || index >= mDrawableCount) {
+            throw new IndexOutOfBoundsException(
+                    "Index: " + index + ", Size: " + mDrawableCount);
         }
+    }
 
-        return null;
+    private void appendDrawableInfo(DrawableInfo drawableInfo) {
+        mDrawables[mDrawableCount++] = drawableInfo;
+        if (drawableInfo.mId != NO_ID && mDrawableIds.get(drawableInfo.mId) == null) {
+            mDrawableIds.put(drawableInfo.mId, drawableInfo);
+        }
+        retainDrawable(drawableInfo.mDrawable);
     }
 
-    private boolean hasSameDrawable(Drawable drawable) {
-        List<DrawableInfo> drawables = this.mDrawables;
-        for (int i = 0; i < drawables.size(); i++) {
-            if (drawables.get(i).mDrawable == drawable) {
-                return true;
+    private DrawableInfo removeDrawableInfoAt(int index) {
+        final DrawableInfo[] drawables = mDrawables;
+        final DrawableInfo drawableInfo = drawables[index];
+        System.arraycopy(drawables, index + 1, drawables, index, mDrawableCount - index - 1);
+        drawables[--mDrawableCount] = null;
+
+        if (drawableInfo.mId != NO_ID && mDrawableIds.get(drawableInfo.mId) == drawableInfo) {
+            mDrawableIds.remove(drawableInfo.mId);
+            // 图集可能包含重复的id，由剩下的第一个接替。
+            for (int i = 0; i < mDrawableCount; i++) {
+                if (drawables[i].mId == drawableInfo.mId) {
+                    mDrawableIds.put(drawableInfo.mId, drawables[i]);
+                    break;
+                }
             }
         }
+        releaseDrawable(drawableInfo.mDrawable);
+        cancelPlaceholder(drawableInfo);
+        return drawableInfo;
+    }
+
+    private void clearDrawableInfos() {
+        for (int i = 0; i < mDrawableCount; i++) {
+            cancelPlaceholder(mDrawables[i]);
+            mDrawables[i] = null;
+        }
+        mDrawableCount = 0;
+        mDrawableIds.clear();
+        mDrawableRefs.clear();
+    }
+
+    private void retainDrawable(Drawable drawable) {
+        Integer count = mDrawableRefs.get(drawable);
+        mDrawableRefs.put(drawable, count == null ? 1 : count + 1);
+    }
 
-        return false;
+    private void releaseDrawable(Drawable drawable) {
+        Integer count = mDrawableRefs.get(drawable);
+        if (count == null || count <= 1) {
+            mDrawableRefs.remove(drawable);
+        } else {
+            mDrawableRefs.put(drawable, count - 1);
+        }
     }
 
     /**
@@ -256,16 +422,41 @@ public class CompositionAvatarView extends View {
 
     /**
      * 添加drawable, 如果id已经存在, drawable将会被替换
+     * <p>
+     * 同一个drawable（包括动画drawable）可以同时添加到多个CompositionAvatarView中，
+     * 无需为每个View分别解码一份。
      *
      * @param id       the drawable id.
      * @param drawable the drawable.
      * @return <code>true</code> - 如果添加成功， <code>false</code> - 其他
+     * @see #addDrawable(int, Drawable, String)
      */
     public boolean addDrawable(int id, @NonNull Drawable drawable) {
+        return addDrawable(id, drawable, null);
+    }
+
+    /**
+     * 添加drawable, 如果id已经存在, drawable将会被替换
+     * <p>
+     * <code>key</code>是drawable的来源标识（如图像的URL），会随id一起保存在View的状态中，
+     * View状态恢复时通过{@link OnRestoreDrawableListener}重新获取drawable.
+     *
+     * @param id       the drawable id.
+     * @param drawable the drawable.
+     * @param key      drawable的来源标识
+     * @return <code>true</code> - 如果添加成功， <code>false</code> - 其他
+     * @see #setOnRestoreDrawableListener(OnRestoreDrawableListener)
+     */
+    public boolean addDrawable(int id, @NonNull Drawable drawable, @Nullable String key) {
         DrawableInfo old = findAvatarDrawableById(id);
         if (old != null) {
             Drawable d = old.mDrawable;
+            cancelPlaceholder(old);
+            releaseDrawable(d);
+            retainDrawable(drawable);
             old.mDrawable = drawable;
+            old.mKey = key;
+            invalidateSlotCache(old);
             if (!hasSameDrawable(d)) {
                 cleanDrawable(d);
             }
@@ -275,23 +466,155 @@ public class CompositionAvatarView extends View {
                 return false;
             }
 
-            mDrawables.add(crateAvatarDrawable(id, drawable));
-            layoutDrawables();
+            DrawableInfo drawableInfo = crateAvatarDrawable(id, drawable);
+            drawableInfo.mKey = key;
+            appendDrawableInfo(drawableInfo);
+            layoutDrawables(true);
+        }
+
+        setupDrawable(drawable);
+        invalidate();
+
+        return true;
+    }
+
+    /**
+     * 设置图集。图集是一张包含了所有图像的位图，每个图像对应其中的一个区域，
+     * 所有图像共用这一张位图，无需分别加载和解码。原有的drawable将会被移除。
+     * <p>
+     * 超过{@link #MAX_DRAWABLE_COUNT}的区域将被忽略。
+     *
+     * @param atlas   图集位图
+     * @param regions 每个图像在图集中的区域
+     * @param ids     每个图像的id，可以为<code>null</code>
+     * @return 添加的图像数量
+     * @throws IllegalArgumentException 如果<code>ids</code>的长度与<code>regions</code>的长度不同
+     * @see #addDrawable(int, Drawable)
+     */
+    public int setAtlas(@NonNull Bitmap atlas, @NonNull Rect[] regions, @Nullable int[] ids) {
+        //noinspection ConstantConditions
+        if (atlas == null || regions == null) {
+            throw new NullPointerException();
         }
+        if (ids != null && ids.length != regions.length) {
+            throw new IllegalArgumentException("ids.length != regions.length");
+        }
+
+        for (int i = 0; i < mDrawableCount; i++) {
+            DrawableInfo drawable = mDrawables[i];
+            cleanDrawable(drawable.mDrawable);
+        }
+        clearDrawableInfos();
 
-        drawable.setCallback(this);
-        drawable.setVisible(getWindowVisibility() == VISIBLE && isShown(), true);
+        final int count = Math.min(regions.length, MAX_DRAWABLE_COUNT);
+        for (int i = 0; i < count; i++) {
+            Drawable drawable = new AtlasRegionDrawable(atlas, regions[i]);
+            appendDrawableInfo(crateAvatarDrawable(ids != null ? ids[i] : NO_ID, drawable));
+            setupDrawable(drawable);
+        }
+        layoutDrawables();
+
+        return count;
+    }
+
+    /**
+     * 设置图集。
+     *
+     * @see #setAtlas(Bitmap, Rect[], int[])
+     */
+    public int setAtlas(@NonNull Bitmap atlas, @NonNull Rect[] regions) {
+        return setAtlas(atlas, regions, null);
+    }
+
+    private void setupDrawable(Drawable drawable) {
+        SharedDrawableCallback.attach(drawable, this);
+        SharedDrawableCallback.setVisible(drawable, this,
+                getWindowVisibility() == VISIBLE && isShown(), true);
         if (drawable.isStateful()) {
             drawable.setState(getDrawableState());
         }
         if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
             drawable.setLayoutDirection(getLayoutDirection());
         }
-        invalidate();
+    }
+
+    /**
+     * 添加BlurHash占位图, 如果id已经存在, drawable将会被替换
+     * <p>
+     * 占位图会先以图像的平均颜色显示，同时在后台线程中解码为模糊预览图，解码完成后替换到原位置。
+     * 之后通过{@link #addDrawable(int, Drawable)}以相同的id添加真正的图像即可替换占位图。
+     * 解码结果在所有View之间共享缓存，相同的BlurHash不会重复解码。
+     * 若解码完成前该位置已被替换或移除，则不再使用预览图。View离开窗口时解码不会被取消，
+     * 以便View（如RecyclerView缓存的列表项）重新添加到窗口时显示预览图。
+     *
+     * @param id       the drawable id, 不能为{@link #NO_ID}.
+     * @param blurHash the BlurHash.
+     * @return <code>true</code> - 如果添加成功， <code>false</code> - 其他
+     * @throws IllegalArgumentException 如果id为{@link #NO_ID}或BlurHash无效
+     * @see <a href="https://blurha.sh">BlurHash</a>
+     */
+    public boolean addPlaceholder(int id, @NonNull String blurHash) {
+        if (id == NO_ID) {
+            throw new IllegalArgumentException("id == NO_ID");
+        }
+
+        final Bitmap cached = BlurHashLoader.getCached(blurHash);
+        if (cached != null) {
+            return addDrawable(id, new BitmapDrawable(getResources(), cached));
+        }
 
+        Drawable placeholder = new ColorDrawable(BlurHash.averageColor(blurHash));
+        if (!addDrawable(id, placeholder)) {
+            return false;
+        }
+
+        final PlaceholderRequest request = new PlaceholderRequest(this, id, blurHash);
+        //noinspection ConstantConditions
+        findAvatarDrawableById(id).mPlaceholderRequest = request;
+        BlurHashLoader.load(blurHash, request);
         return true;
     }
 
+    private void onPlaceholderLoaded(PlaceholderRequest request, Bitmap bitmap) {
+        // 占位图仍未被替换时才使用预览图。
+        DrawableInfo drawableInfo = findAvatarDrawableById(request.mId);
+        if (drawableInfo != null && drawableInfo.mPlaceholderRequest == request) {
+            drawableInfo.mPlaceholderRequest = null;
+            addDrawable(request.mId, new BitmapDrawable(getResources(), bitmap));
+        }
+    }
+
+    private void cancelPlaceholder(DrawableInfo drawableInfo) {
+        final PlaceholderRequest request = drawableInfo.mPlaceholderRequest;
+        if (request != null) {
+            drawableInfo.mPlaceholderRequest = null;
+            BlurHashLoader.cancel(request.mBlurHash, request);
+        }
+    }
+
+    /**
+     * 占位图解码请求。只弱引用View，解码完成前View可以被回收。
+     */
+    private static class PlaceholderRequest implements BlurHashLoader.Callback {
+        final WeakReference<CompositionAvatarView> mView;
+        final int mId;
+        final String mBlurHash;
+
+        PlaceholderRequest(CompositionAvatarView view, int id, String blurHash) {
+            mView = new WeakReference<>(view);
+            mId = id;
+            mBlurHash = blurHash;
+        }
+
+        @Override
+        public void onLoaded(@NonNull Bitmap bitmap) {
+            CompositionAvatarView view = mView.get();
+            if (view != null) {
+                view.onPlaceholderLoaded(this, bitmap);
+            }
+        }
+    }
+
     private DrawableInfo crateAvatarDrawable(int id, Drawable drawable) {
         DrawableInfo avatar = new DrawableInfo();
         avatar.mId = id;
@@ -307,9 +630,13 @@ public class CompositionAvatarView extends View {
      * @see #removeDrawableById(int)
      */
     public void removeDrawable(@NonNull Drawable drawable) {
-        List<DrawableInfo> drawables = this.mDrawables;
-        for (int i = drawables.size() - 1; i >= 0; i--) {
-            if (drawables.get(i).mDrawable == drawable) {
+        if (!hasSameDrawable(drawable)) {
+            return;
+        }
+
+        DrawableInfo[] drawables = this.mDrawables;
+        for (int i = mDrawableCount - 1; i >= 0; i--) {
+            if (drawables[i].mDrawable == drawable) {
                 removeDrawableAt(i);
             }
         }
@@ -325,9 +652,14 @@ public class CompositionAvatarView extends View {
      */
     @Nullable
     public Drawable removeDrawableById(int id) {
-        List<DrawableInfo> drawables = this.mDrawables;
-        for (int i = 0; i < drawables.size(); i++) {
-            if (drawables.get(i).mId == id) {
+        final DrawableInfo target = id != NO_ID ? mDrawableIds.get(id) : null;
+        if (id != NO_ID && target == null) {
+            return null;
+        }
+
+        DrawableInfo[] drawables = this.mDrawables;
+        for (int i = 0; i < mDrawableCount; i++) {
+            if (target != null ? drawables[i] == target : drawables[i].mId == id) {
                 return removeDrawableAt(i);
             }
         }
@@ -348,11 +680,24 @@ public class CompositionAvatarView extends View {
      */
     @NonNull
     public Drawable removeDrawableAt(int index) {
-        DrawableInfo drawable = mDrawables.remove(index);
-        if (!hasSameDrawable(drawable.mDrawable)) {
+        checkIndex(index);
+
+        final boolean animate = mTransitionEnabled && mTransitionDuration > 0
+                && mOutgoingCount < MAX_DRAWABLE_COUNT;
+        if (animate) {
+            // 在移除前记录起点，被移除的图像从其当前的位置和大小开始缩小。
+            captureTransitionStart();
+            mTransitionStartCaptured = true;
+        }
+
+        DrawableInfo drawable = removeDrawableInfoAt(index);
+        if (animate && drawable.mLaidOut) {
+            drawable.mHasGap = false;
+            mOutgoingDrawables[mOutgoingCount++] = drawable;
+        } else if (!hasSameDrawable(drawable.mDrawable)) {
             cleanDrawable(drawable.mDrawable);
         }
-        layoutDrawables();
+        layoutDrawables(true);
         return drawable.mDrawable;
     }
 
@@ -360,30 +705,62 @@ public class CompositionAvatarView extends View {
      * 移除所有的drawable.
      */
     public void clearDrawable() {
-        if (!mDrawables.isEmpty()) {
-            for (DrawableInfo drawable : mDrawables) {
+        if (mDrawableCount > 0) {
+            for (int i = 0; i < mDrawableCount; i++) {
+                DrawableInfo drawable = mDrawables[i];
                 cleanDrawable(drawable.mDrawable);
             }
-            mDrawables.clear();
+            clearDrawableInfos();
             layoutDrawables();
         }
     }
 
     private void cleanDrawable(Drawable drawable) {
-        drawable.setCallback(null);
-        unscheduleDrawable(drawable);
+        // 若drawable仍被其他View共享，则不能取消其动画调度。
+        if (SharedDrawableCallback.detach(drawable, this)) {
+            unscheduleDrawable(drawable);
+        }
     }
 
     private void layoutDrawables() {
-        mSteinerCircleRadius = 0;
-        mOffsetY = 0;
+        layoutDrawables(false);
+    }
 
-        int width = getWidth() - getPaddingLeft() - getPaddingRight();
-        int height = getHeight() - getPaddingTop() - getPaddingBottom();
+    private void layoutDrawables(boolean animate) {
+        layoutDrawables(getWidth(), getHeight(), animate);
+    }
 
-        mContentSize = Math.min(width, height);
-        final List<DrawableInfo> drawables = mDrawables;
-        final int N = drawables.size();
+    private void layoutDrawables(int viewWidth, int viewHeight, boolean animate) {
+        consumePrefetch(false);
+
+        int width = viewWidth - getPaddingLeft() - getPaddingRight();
+        int height = viewHeight - getPaddingTop() - getPaddingBottom();
+        final int contentSize = Math.min(width, height);
+
+        final boolean transition = animate && mTransitionEnabled && mTransitionDuration > 0
+                && contentSize > 0 && contentSize == mContentSize && isShown();
+        if (transition) {
+            if (!mTransitionStartCaptured) {
+                captureTransitionStart();
+            }
+        } else {
+            cancelTransition();
+        }
+        mTransitionStartCaptured = false;
+
+        mSteinerCircleRadius = 0;
+        float offsetY = 0;
+
+        mContentSize = contentSize;
+        mLayoutWidth = viewWidth;
+        mLayoutHeight = viewHeight;
+        // 内容居中后的位置可能不是整数。
+        final float contentLeft = getPaddingLeft() + Math.max(width - height, 0) * .5f;
+        final float contentTop = getPaddingTop() + Math.max(height - width, 0) * .5f;
+        mContentLeft = Math.round(contentLeft);
+        mContentTop = Math.round(contentTop);
+        final DrawableInfo[] drawables = mDrawables;
+        final int N = mDrawableCount;
         float center = mContentSize * .5f;
         if (mContentSize > 0 && N > 0) {
             // 图像圆的半径。
@@ -400,11 +777,12 @@ public class CompositionAvatarView extends View {
                 final double sinN = Math.sin(Math.PI / N);
                 // 以所有图像圆为内切圆的圆的半径
                 final float R = (float) (r * ((sinN + 1) / sinN));
-                mOffsetY = (float)
+                offsetY = (float)
                         ((mContentSize - R - r * (1 + 1 / Math.tan(Math.PI / N))) / 2f);
             }
 
             mSteinerCircleRadius = r;
+            mContentTop = Math.round(contentTop + offsetY);
 
             final float startX, startY;
             if (N % 2 == 0) {
@@ -419,8 +797,8 @@ public class CompositionAvatarView extends View {
 
             matrix.reset();
 
-            for (int i = 0; i < drawables.size(); i++) {
-                DrawableInfo drawable = drawables.get(i);
+            for (int i = 0; i < mDrawableCount; i++) {
+                DrawableInfo drawable = drawables[i];
                 drawable.reset();
 
                 drawable.mHasGap = i > 0;
@@ -433,38 +811,204 @@ public class CompositionAvatarView extends View {
                 pointsTemp[1] = startY;
                 if (i > 0) {
                     // 以上一个圆的圆心旋转计算得出当前圆的圆位置
-                    matrix.postRotate(360.f / N, center, center + mOffsetY);
+                    matrix.postRotate(360.f / N, center, center + offsetY);
                     matrix.mapPoints(pointsTemp);
                 }
 
                 drawable.mCenterX = pointsTemp[0];
                 drawable.mCenterY = pointsTemp[1];
+                drawable.mLayoutRadius = r;
 
                 updateDrawableBounds(drawable);
 
                 drawable.mMaskPath.addCircle(drawable.mCenterX, drawable.mCenterY, r,
                         Path.Direction.CW);
                 drawable.mMaskPath.setFillType(Path.FillType.INVERSE_WINDING);
+
+                if (!drawable.mLaidOut) {
+                    // 新添加的图像从其位置放大出现。
+                    drawable.mLaidOut = true;
+                    drawable.mStartCenterX = drawable.mCenterX;
+                    drawable.mStartCenterY = drawable.mCenterY + mContentTop;
+                    drawable.mStartRadius = 0;
+                }
             }
 
             if (N > 2) {
-                DrawableInfo first = drawables.get(0);
-                DrawableInfo last = drawables.get(N - 1);
+                DrawableInfo first = drawables[0];
+                DrawableInfo last = drawables[N - 1];
                 first.mHasGap = true;
                 first.mGapCenterX = last.mCenterX;
                 first.mGapCenterY = last.mCenterY;
             }
         }
 
+        if (transition && (N > 0 || mOutgoingCount > 0)) {
+            startTransition();
+        } else {
+            clearOutgoingDrawables();
+        }
         invalidate();
     }
 
+    /**
+     * 记录各图像当前（可能处于上一个过渡动画中）的位置和大小，作为过渡动画的起点。
+     * 纵坐标包含了内容的纵向位置，因为布局的纵向偏移会随着图像数量变化。
+     */
+    private void captureTransitionStart() {
+        updateTransitionState(getTransitionFraction());
+        for (int i = 0; i < mDrawableCount; i++) {
+            DrawableInfo drawable = mDrawables[i];
+            if (drawable.mLaidOut) {
+                captureTransitionStart(drawable);
+            }
+        }
+        for (int i = 0; i < mOutgoingCount; i++) {
+            captureTransitionStart(mOutgoingDrawables[i]);
+        }
+    }
+
+    private void captureTransitionStart(DrawableInfo drawable) {
+        drawable.mStartCenterX = drawable.mCurrentCenterX;
+        drawable.mStartCenterY = drawable.mCurrentCenterY + mContentTop;
+        drawable.mStartRadius = drawable.mCurrentRadius;
+    }
+
+    private void startTransition() {
+        ValueAnimator animator = mTransitionAnimator;
+        if (animator == null) {
+            animator = ValueAnimator.ofFloat(0f, 1f);
+            animator.addUpdateListener(new ValueAnimator.AnimatorUpdateListener() {
+                @Override
+                public void onAnimationUpdate(ValueAnimator animation) {
+                    invalidate();
+                }
+            });
+            animator.addListener(new AnimatorListenerAdapter() {
+                @Override
+                public void onAnimationEnd(Animator animation) {
+                    if (!mRestartingTransition) {
+                        clearOutgoingDrawables();
+                        invalidate();
+                    }
+                }
+            });
+            mTransitionAnimator = animator;
+        } else {
+            mRestartingTransition = true;
+            animator.cancel();
+            mRestartingTransition = false;
+        }
+
+        animator.setDuration(mTransitionDuration);
+        animator.start();
+    }
+
+    private void cancelTransition() {
+        if (mTransitionAnimator != null && mTransitionAnimator.isRunning()) {
+            mTransitionAnimator.cancel();
+            invalidate();
+        }
+        clearOutgoingDrawables();
+    }
+
+    /**
+     * 清理已完成缩小动画的被移除图像。
+     */
+    private void clearOutgoingDrawables() {
+        final DrawableInfo[] outgoing = mOutgoingDrawables;
+        for (int i = 0; i < mOutgoingCount; i++) {
+            Drawable drawable = outgoing[i].mDrawable;
+            outgoing[i] = null;
+            if (!hasSameDrawable(drawable)) {
+                cleanDrawable(drawable);
+            }
+        }
+        mOutgoingCount = 0;
+    }
+
+    private float getTransitionFraction() {
+        final ValueAnimator animator = mTransitionAnimator;
+        return animator != null && animator.isRunning() ? animator.getAnimatedFraction() : 1f;
+    }
+
+    /**
+     * 根据过渡动画的进度计算各图像当前的位置和大小。
+     */
+    private void updateTransitionState(float fraction) {
+        final float radius = mSteinerCircleRadius;
+        final float offsetY = mContentTop;
+        final DrawableInfo[] drawables = mDrawables;
+        for (int i = 0; i < mDrawableCount; i++) {
+            DrawableInfo drawable = drawables[i];
+            if (fraction >= 1f) {
+                drawable.mCurrentCenterX = drawable.mCenterX;
+                drawable.mCurrentCenterY = drawable.mCenterY;
+                drawable.mCurrentRadius = radius;
+            } else {
+                drawable.mCurrentCenterX = lerp(drawable.mStartCenterX, drawable.mCenterX,
+                        fraction);
+                drawable.mCurrentCenterY = lerp(drawable.mStartCenterY,
+                        drawable.mCenterY + offsetY, fraction) - offsetY;
+                drawable.mCurrentRadius = lerp(drawable.mStartRadius, radius, fraction);
+            }
+        }
+
+        // 被移除的图像停留在原位置，缩小至消失。
+        final DrawableInfo[] outgoing = mOutgoingDrawables;
+        for (int i = 0; i < mOutgoingCount; i++) {
+            DrawableInfo drawable = outgoing[i];
+            drawable.mCurrentCenterX = drawable.mStartCenterX;
+            drawable.mCurrentCenterY = drawable.mStartCenterY - offsetY;
+            drawable.mCurrentRadius = fraction >= 1f ? 0f
+                    : lerp(drawable.mStartRadius, 0f, fraction);
+        }
+    }
+
+    private static float lerp(float start, float end, float fraction) {
+        return start + (end - start) * fraction;
+    }
+
+    /**
+     * 绘制处于过渡动画中的图像。图像按照其最终布局绘制，再通过画布变换映射到当前的位置和大小，
+     * 所以每一帧都不需要重建遮罩路径或者重新设置drawable的边界。
+     */
+    private void drawTransitionDrawable(Canvas canvas, DrawableInfo drawable,
+                                        @Nullable DrawableInfo gapNeighbor) {
+        if (drawable.mCurrentRadius <= 0f) {
+            return;
+        }
+
+        final float radius = drawable.mLayoutRadius;
+        final Paint paint = mPaint;
+
+        final int savedLayer = canvas.saveLayer(0, 0, mContentSize, mContentSize,
+                null, Canvas.ALL_SAVE_FLAG);
+
+        final int saveCount = canvas.save();
+        canvas.translate(drawable.mCurrentCenterX, drawable.mCurrentCenterY);
+        final float scale = drawable.mCurrentRadius / radius;
+        canvas.scale(scale, scale);
+        canvas.translate(-drawable.mCenterX, -drawable.mCenterY);
+        drawDrawable(canvas, drawable);
+        canvas.drawPath(drawable.mMaskPath, paint);
+        canvas.restoreToCount(saveCount);
+
+        if (gapNeighbor != null && mGap > 0f) {
+            canvas.drawCircle(gapNeighbor.mCurrentCenterX, gapNeighbor.mCurrentCenterY,
+                    gapNeighbor.mCurrentRadius * (mGap + 1f), paint);
+        }
+
+        canvas.restoreToCount(savedLayer);
+    }
+
     private void updateDrawableBounds(DrawableInfo drawableInfo) {
         final Drawable drawable = drawableInfo.mDrawable;
 
         final float radius = mSteinerCircleRadius;
         if (radius <= 0) {
-            drawable.setBounds(0, 0, 0, 0);
+            drawableInfo.mBounds.setEmpty();
+            applyDrawableBounds(drawableInfo);
             return;
         }
 
@@ -494,58 +1038,261 @@ public class CompositionAvatarView extends View {
         }
 
         bounds.offset(drawableInfo.mCenterX, drawableInfo.mCenterY);
-        drawable.setBounds((int) bounds.left, (int) bounds.top,
+        drawableInfo.mBounds.set((int) bounds.left, (int) bounds.top,
                 Math.round(bounds.right), Math.round(bounds.bottom));
+        applyDrawableBounds(drawableInfo);
+    }
+
+    /**
+     * 设置drawable的边界。只有drawable属于当前View时才设置，被其他View使用的drawable
+     * 只通过{@link #drawDrawable(Canvas, DrawableInfo)}中的画布变换绘制到其位置，
+     * 因为修改其边界会使所有使用该drawable的View都重绘（以及重新生成其缓存）。
+     */
+    private void applyDrawableBounds(DrawableInfo drawableInfo) {
+        final Drawable drawable = drawableInfo.mDrawable;
+        final Drawable.Callback callback = drawable.getCallback();
+        if (callback == null || callback == this || drawable.getBounds().isEmpty()) {
+            drawable.setBounds(drawableInfo.mBounds);
+        }
+    }
+
+    /**
+     * 绘制drawable, 边界不同时通过画布变换绘制，参见{@link #applyDrawableBounds(DrawableInfo)}.
+     */
+    private void drawDrawable(Canvas canvas, DrawableInfo drawableInfo) {
+        final Drawable drawable = drawableInfo.mDrawable;
+        final Rect current = drawable.getBounds();
+        final Rect target = drawableInfo.mBounds;
+        if (current.equals(target)) {
+            drawable.draw(canvas);
+            return;
+        }
+
+        if (current.isEmpty()) {
+            drawable.setBounds(target);
+            drawable.draw(canvas);
+            return;
+        }
+
+        final int saveCount = canvas.save();
+        canvas.translate(target.left, target.top);
+        canvas.scale(target.width() / (float) current.width(),
+                target.height() / (float) current.height());
+        canvas.translate(-current.left, -current.top);
+        drawable.draw(canvas);
+        canvas.restoreToCount(saveCount);
+    }
+
+    private void invalidateDrawableCaches() {
+        consumePrefetch(false);
+        for (int i = 0; i < mDrawableCount; i++) {
+            DrawableInfo drawable = mDrawables[i];
+            drawable.mCacheInvalid = true;
+        }
+    }
+
+    private void invalidateDrawableCache(Drawable drawable) {
+        for (int i = 0; i < mDrawableCount; i++) {
+            DrawableInfo drawableInfo = mDrawables[i];
+            if (drawableInfo.mDrawable == drawable) {
+                invalidateSlotCache(drawableInfo);
+            }
+        }
+    }
+
+    private void invalidateSlotCache(DrawableInfo drawableInfo) {
+        if (!drawableInfo.mCacheInvalid && drawableInfo.mCache != null) {
+            // 已生成（可能是预先生成）的缓存被丢弃。
+            consumePrefetch(false);
+        }
+        drawableInfo.mCacheInvalid = true;
+    }
+
+    private boolean isDrawableCacheable(DrawableInfo drawableInfo) {
+        return mDrawableCacheEnabled && !(drawableInfo.mDrawable instanceof Animatable);
+    }
+
+    /**
+     * 确保drawable的缓存位图可用，必要时重新生成。
+     *
+     * @return <code>true</code> - 如果缓存可用， <code>false</code> - 其他
+     */
+    private boolean ensureDrawableCache(DrawableInfo drawableInfo, float gapRadius) {
+        if (!drawableInfo.mCacheInvalid && drawableInfo.mCache != null) {
+            return true;
+        }
+
+        final float r = mSteinerCircleRadius;
+        final int left = (int) Math.floor(drawableInfo.mCenterX - r);
+        final int top = (int) Math.floor(drawableInfo.mCenterY - r);
+        final int width = (int) Math.ceil(drawableInfo.mCenterX + r) - left;
+        final int height = (int) Math.ceil(drawableInfo.mCenterY + r) - top;
+        if (width <= 0 || height <= 0) {
+            return false;
+        }
+
+        Bitmap cache = drawableInfo.mCache;
+        if (cache == null || cache.getWidth() != width || cache.getHeight() != height) {
+            drawableInfo.mCache = null;
+            try {
+                cache = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+            } catch (OutOfMemoryError e) {
+                return false;
+            }
+            drawableInfo.mCache = cache;
+        } else {
+            cache.eraseColor(Color.TRANSPARENT);
+        }
+
+        final Canvas canvas = mCacheCanvas;
+        canvas.setBitmap(cache);
+        final int saveCount = canvas.save();
+        canvas.translate(-left, -top);
+        drawMaskedDrawable(canvas, drawableInfo, gapRadius);
+        canvas.restoreToCount(saveCount);
+        canvas.setBitmap(null);
+
+        drawableInfo.mCacheLeft = left;
+        drawableInfo.mCacheTop = top;
+        drawableInfo.mCacheInvalid = false;
+        return true;
+    }
+
+    private void drawMaskedDrawable(Canvas canvas, DrawableInfo drawableInfo, float gapRadius) {
+        final Paint paint = mPaint;
+        drawDrawable(canvas, drawableInfo);
+
+        canvas.drawPath(drawableInfo.mMaskPath, paint);
+        if (drawableInfo.mHasGap && mGap > 0f) {
+            canvas.drawCircle(drawableInfo.mGapCenterX, drawableInfo.mGapCenterY, gapRadius,
+                    paint);
+        }
     }
 
     @Override
     protected void onSizeChanged(int w, int h, int oldW, int oldH) {
         super.onSizeChanged(w, h, oldW, oldH);
-        layoutDrawables();
+        // 已按此大小（预先）布局过，无需重新布局。
+        if (w != mLayoutWidth || h != mLayoutHeight) {
+            layoutDrawables();
+        }
+    }
+
+    @Override
+    protected void onLayout(boolean changed, int left, int top, int right, int bottom) {
+        super.onLayout(changed, left, top, right, bottom);
+        // 按其他大小预先布局过，而实际大小并未改变时，onSizeChanged不会被调用。
+        if (getWidth() != mLayoutWidth || getHeight() != mLayoutHeight) {
+            layoutDrawables();
+        }
+    }
+
+    /**
+     * 按给定的View大小预先完成布局，并在启用了drawable缓存时预先生成缓存，
+     * 使View在真正显示时可以直接绘制。
+     *
+     * @return <code>true</code> - 如果完成了预备工作， <code>false</code> - 其他
+     * @see CompositionAvatarPrefetcher
+     */
+    boolean prefetch(int width, int height, @NonNull CompositionAvatarPrefetcher prefetcher) {
+        if (width <= 0 || height <= 0 || mDrawableCount <= 0) {
+            return false;
+        }
+
+        if (width != mLayoutWidth || height != mLayoutHeight) {
+            layoutDrawables(width, height, false);
+        } else {
+            consumePrefetch(false);
+        }
+        if (mContentSize <= 0) {
+            return false;
+        }
+
+        if (mDrawableCacheEnabled) {
+            final float gapRadius = mSteinerCircleRadius * (mGap + 1f);
+            for (int i = 0; i < mDrawableCount; i++) {
+                DrawableInfo drawable = mDrawables[i];
+                if (isDrawableCacheable(drawable)) {
+                    ensureDrawableCache(drawable, gapRadius);
+                }
+            }
+        }
+
+        mPrefetcher = prefetcher;
+        return true;
+    }
+
+    /**
+     * 结束预备工作，并向{@link CompositionAvatarPrefetcher}报告其是否被使用。
+     */
+    private void consumePrefetch(boolean used) {
+        final CompositionAvatarPrefetcher prefetcher = mPrefetcher;
+        if (prefetcher != null) {
+            mPrefetcher = null;
+            if (used) {
+                prefetcher.onPrefetchUsed();
+            } else {
+                prefetcher.onPrefetchDiscarded();
+            }
+        }
     }
 
     @Override
     protected void onDraw(Canvas canvas) {
         super.onDraw(canvas);
+        consumePrefetch(true);
 
-        final List<DrawableInfo> drawables = mDrawables;
-        final int N = drawables.size();
+        final DrawableInfo[] drawables = mDrawables;
+        final int N = mDrawableCount;
 
-        if (!isInEditMode() && (mContentSize <= 0 || N <= 0)) {
+        if (!isInEditMode() && (mContentSize <= 0 || (N <= 0 && mOutgoingCount <= 0))) {
             return;
         }
 
-        canvas.translate(getPaddingLeft(), getPaddingTop());
-        int width = getWidth() - getPaddingLeft() - getPaddingRight();
-        int height = getHeight() - getPaddingTop() - getPaddingBottom();
-        if (width > height) {
-            canvas.translate((width - height) * .5f, 0);
-        } else {
-            canvas.translate(0, (height - width) * .5f);
-        }
-
         if (isInEditMode()) {
+            canvas.translate(getPaddingLeft(), getPaddingTop());
+            int width = getWidth() - getPaddingLeft() - getPaddingRight();
+            int height = getHeight() - getPaddingTop() - getPaddingBottom();
+            if (width > height) {
+                canvas.translate((width - height) * .5f, 0);
+            } else {
+                canvas.translate(0, (height - width) * .5f);
+            }
             float cr = Math.min(width, height) * .5f;
             canvas.drawCircle(cr, cr, cr, mPaint);
             return;
         }
 
-        canvas.translate(0, mOffsetY);
+        // 平移整数个像素，缓存位图不会在小数位置上被重新采样。
+        canvas.translate(mContentLeft, mContentTop);
 
-        final Paint paint = mPaint;
-        final float gapRadius = mSteinerCircleRadius * (mGap + 1f);
-        for (int i = 0; i < drawables.size(); i++) {
-            DrawableInfo drawable = drawables.get(i);
-            final int savedLayer = canvas.saveLayer(0, 0, mContentSize, mContentSize,
-                    null, Canvas.ALL_SAVE_FLAG);
-
-            drawable.mDrawable.draw(canvas);
+        final float fraction = getTransitionFraction();
+        if (fraction < 1f) {
+            updateTransitionState(fraction);
+            for (int i = 0; i < mOutgoingCount; i++) {
+                drawTransitionDrawable(canvas, mOutgoingDrawables[i], null);
+            }
+            for (int i = 0; i < N; i++) {
+                DrawableInfo drawable = drawables[i];
+                DrawableInfo gapNeighbor = drawable.mHasGap ? drawables[i > 0 ? i - 1 : N - 1]
+                        : null;
+                drawTransitionDrawable(canvas, drawable, gapNeighbor);
+            }
+            return;
+        }
 
-            canvas.drawPath(drawable.mMaskPath, paint);
-            if (drawable.mHasGap && mGap > 0f) {
-                canvas.drawCircle(drawable.mGapCenterX, drawable.mGapCenterY, gapRadius, paint);
+        final float gapRadius = mSteinerCircleRadius * (mGap + 1f);
+        for (int i = 0; i < mDrawableCount; i++) {
+            DrawableInfo drawable = drawables[i];
+            if (isDrawableCacheable(drawable) && ensureDrawableCache(drawable, gapRadius)) {
+                canvas.drawBitmap(drawable.mCache, drawable.mCacheLeft, drawable.mCacheTop,
+                        mCachePaint);
+                continue;
             }
 
+            final int savedLayer = canvas.saveLayer(0, 0, mContentSize, mContentSize,
+                    null, Canvas.ALL_SAVE_FLAG);
+            drawMaskedDrawable(canvas, drawable, gapRadius);
             canvas.restoreToCount(savedLayer);
         }
     }
@@ -576,16 +1323,19 @@ public class CompositionAvatarView extends View {
 
     private void updateVisible() {
         boolean isVisible = getWindowVisibility() == VISIBLE && isShown();
-        for (DrawableInfo drawable : mDrawables) {
-            drawable.mDrawable.setVisible(isVisible, false);
+        for (int i = 0; i < mDrawableCount; i++) {
+            DrawableInfo drawable = mDrawables[i];
+            SharedDrawableCallback.setVisible(drawable.mDrawable, this, isVisible, false);
         }
     }
 
     @Override
     protected void onDetachedFromWindow() {
         super.onDetachedFromWindow();
-        for (DrawableInfo drawable : mDrawables) {
-            drawable.mDrawable.setVisible(false, false);
+        cancelTransition();
+        for (int i = 0; i < mDrawableCount; i++) {
+            DrawableInfo drawable = mDrawables[i];
+            SharedDrawableCallback.setVisible(drawable.mDrawable, this, false, false);
         }
     }
 
@@ -594,9 +1344,11 @@ public class CompositionAvatarView extends View {
         super.drawableStateChanged();
 
         boolean invalidate = false;
-        for (DrawableInfo drawable : mDrawables) {
+        for (int i = 0; i < mDrawableCount; i++) {
+            DrawableInfo drawable = mDrawables[i];
             Drawable d = drawable.mDrawable;
             if (d.isStateful() && d.setState(getDrawableState())) {
+                invalidateSlotCache(drawable);
                 invalidate = true;
             }
         }
@@ -609,7 +1361,8 @@ public class CompositionAvatarView extends View {
     @Override
     public void jumpDrawablesToCurrentState() {
         super.jumpDrawablesToCurrentState();
-        for (DrawableInfo drawable : mDrawables) {
+        for (int i = 0; i < mDrawableCount; i++) {
+            DrawableInfo drawable = mDrawables[i];
             drawable.mDrawable.jumpToCurrentState();
         }
     }
@@ -622,12 +1375,139 @@ public class CompositionAvatarView extends View {
     @Override
     public void invalidateDrawable(@NonNull Drawable drawable) {
         if (hasSameDrawable(drawable)) {
+            invalidateDrawableCache(drawable);
             invalidate();
         } else {
             super.invalidateDrawable(drawable);
         }
     }
 
+    /**
+     * 设置drawable恢复监听器。
+     *
+     * @param listener the listener.
+     * @see OnRestoreDrawableListener
+     */
+    public void setOnRestoreDrawableListener(@Nullable OnRestoreDrawableListener listener) {
+        mOnRestoreDrawableListener = listener;
+    }
+
+    /**
+     * View状态恢复（如屏幕旋转后）时重新获取drawable的监听器。
+     * <p>
+     * 应从内存或磁盘缓存中直接返回drawable，以便View在恢复后的第一帧就能完整绘制，
+     * 而不必重新加载图像。
+     */
+    public interface OnRestoreDrawableListener {
+        /**
+         * 重新获取drawable.
+         *
+         * @param id  the drawable id.
+         * @param key drawable的来源标识
+         * @return the drawable, <code>null</code> - 如果无法立即获取，该位置将被忽略
+         * @see #addDrawable(int, Drawable, String)
+         */
+        @Nullable
+        Drawable onRestoreDrawable(int id, @Nullable String key);
+    }
+
+    @Override
+    protected Parcelable onSaveInstanceState() {
+        final Parcelable superState = super.onSaveInstanceState();
+        final DrawableInfo[] drawables = mDrawables;
+        final int N = mDrawableCount;
+
+        SavedState ss = new SavedState(superState);
+        ss.mIds = new int[N];
+        ss.mKeys = new String[N];
+        for (int i = 0; i < N; i++) {
+            DrawableInfo drawable = drawables[i];
+            ss.mIds[i] = drawable.mId;
+            ss.mKeys[i] = drawable.mKey;
+        }
+        ss.mGap = mGap;
+        ss.mFitType = mFitType.ordinal();
+
+        return ss;
+    }
+
+    @Override
+    protected void onRestoreInstanceState(Parcelable state) {
+        if (!(state instanceof SavedState)) {
+            super.onRestoreInstanceState(state);
+            return;
+        }
+
+        SavedState ss = (SavedState) state;
+        super.onRestoreInstanceState(ss.getSuperState());
+
+        setGap(ss.mGap);
+        setDrawableFitType(FitType.values()[ss.mFitType]);
+
+        // 若drawable已在状态恢复前被重新设置，则以其为准。
+        final OnRestoreDrawableListener listener = mOnRestoreDrawableListener;
+        if (listener == null || mDrawableCount > 0) {
+            return;
+        }
+
+        final int[] ids = ss.mIds;
+        final String[] keys = ss.mKeys;
+        for (int i = 0; i < ids.length && mDrawableCount < MAX_DRAWABLE_COUNT; i++) {
+            Drawable drawable = listener.onRestoreDrawable(ids[i], keys[i]);
+            if (drawable != null) {
+                DrawableInfo drawableInfo = crateAvatarDrawable(ids[i], drawable);
+                drawableInfo.mKey = keys[i];
+                appendDrawableInfo(drawableInfo);
+                setupDrawable(drawable);
+            }
+        }
+
+        if (mDrawableCount > 0) {
+            layoutDrawables();
+        }
+    }
+
+    static class SavedState extends BaseSavedState {
+        int[] mIds;
+        String[] mKeys;
+        float mGap;
+        int mFitType;
+
+        SavedState(Parcelable superState) {
+            super(superState);
+        }
+
+        private SavedState(Parcel in) {
+            super(in);
+            mIds = in.createIntArray();
+            mKeys = in.createStringArray();
+            mGap = in.readFloat();
+            mFitType = in.readInt();
+        }
+
+        @Override
+        public void writeToParcel(Parcel out, int flags) {
+            super.writeToParcel(out, flags);
+            out.writeIntArray(mIds);
+            out.writeStringArray(mKeys);
+            out.writeFloat(mGap);
+            out.writeInt(mFitType);
+        }
+
+        public static final Parcelable.Creator<SavedState> CREATOR =
+                new Parcelable.Creator<SavedState>() {
+                    @Override
+                    public SavedState createFromParcel(Parcel in) {
+                        return new SavedState(in);
+                    }
+
+                    @Override
+                    public SavedState[] newArray(int size) {
+                        return new SavedState[size];
+                    }
+                };
+    }
+
     @Override
     public CharSequence getAccessibilityClassName() {
         return CompositionAvatarView.class.getName();
@@ -636,12 +1516,30 @@ public class CompositionAvatarView extends View {
     private static class DrawableInfo {
         int mId = View.NO_ID;
         Drawable mDrawable;
+        String mKey;
+        PlaceholderRequest mPlaceholderRequest;
         float mCenterX;
         float mCenterY;
         float mGapCenterX;
         float mGapCenterY;
         boolean mHasGap;
+        final Rect mBounds = new Rect();
         final Path mMaskPath = new Path();
+        Bitmap mCache;
+        int mCacheLeft;
+        int mCacheTop;
+        boolean mCacheInvalid = true;
+
+        boolean mLaidOut;
+        float mLayoutRadius;
+        // 过渡动画的起点，纵坐标包含内容的纵向位置。
+        float mStartCenterX;
+        float mStartCenterY;
+        float mStartRadius;
+        // 过渡动画中当前的位置和大小。
+        float mCurrentCenterX;
+        float mCurrentCenterY;
+        float mCurrentRadius;
 
         void reset() {
             mCenterX = 0;
@@ -650,6 +1548,7 @@ public class CompositionAvatarView extends View {
             mGapCenterY = 0;
             mHasGap = false;
             mMaskPath.reset();
+            mCacheInvalid = true;
         }
     }
 
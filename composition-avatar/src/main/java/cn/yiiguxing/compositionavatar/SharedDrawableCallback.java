@@ -0,0 +1,225 @@
+package cn.yiiguxing.compositionavatar;
+
+import android.graphics.drawable.Drawable;
+import android.support.annotation.NonNull;
+import android.view.View;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.WeakHashMap;
+
+/**
+ * 将一个Drawable的回调分发给多个宿主，使同一个Drawable（如动画图像）可以同时被多个View使用。
+ * <p>
+ * 宿主通过引用计数管理：最后一个宿主移除时，Drawable的回调才会被清除；
+ * 只要有任意一个宿主可见，Drawable就保持可见。
+ */
+final class SharedDrawableCallback implements Drawable.Callback {
+
+    /**
+     * Drawable只持有其回调的弱引用，所以需要在此持有共享回调，其生命周期与Drawable相同。
+     */
+    private static final WeakHashMap<Drawable, SharedDrawableCallback> sCallbacks =
+            new WeakHashMap<>();
+
+    private final List<Host> mHosts = new ArrayList<>(2);
+
+    private SharedDrawableCallback() {
+    }
+
+    /**
+     * 添加Drawable的宿主。
+     *
+     * @param drawable the drawable.
+     * @param host     the host.
+     */
+    static void attach(@NonNull Drawable drawable, @NonNull Drawable.Callback host) {
+        final Drawable.Callback callback = drawable.getCallback();
+        if (callback == host) {
+            return;
+        }
+
+        if (callback instanceof SharedDrawableCallback) {
+            ((SharedDrawableCallback) callback).addHost(host, false);
+        } else if (callback == null) {
+            drawable.setCallback(host);
+        } else {
+            SharedDrawableCallback shared = new SharedDrawableCallback();
+            shared.addHost(callback, drawable.isVisible());
+            shared.addHost(host, false);
+            sCallbacks.put(drawable, shared);
+            drawable.setCallback(shared);
+        }
+    }
+
+    /**
+     * 移除Drawable的宿主。
+     *
+     * @param drawable the drawable.
+     * @param host     the host.
+     * @return <code>true</code> - 如果Drawable已没有任何宿主， <code>false</code> - 其他
+     */
+    static boolean detach(@NonNull Drawable drawable, @NonNull Drawable.Callback host) {
+        final Drawable.Callback callback = drawable.getCallback();
+        if (callback == host) {
+            drawable.setCallback(null);
+            return true;
+        }
+
+        if (callback instanceof SharedDrawableCallback) {
+            SharedDrawableCallback shared = (SharedDrawableCallback) callback;
+            shared.removeHost(host);
+            shared.removeStaleHosts();
+
+            final List<Host> hosts = shared.mHosts;
+            if (hosts.size() > 1) {
+                drawable.setVisible(shared.isAnyHostVisible(), false);
+                return false;
+            }
+
+            sCallbacks.remove(drawable);
+            if (hosts.isEmpty()) {
+                drawable.setCallback(null);
+                return true;
+            }
+
+            // 只剩下一个宿主，恢复为直接回调。
+            Host last = hosts.get(0);
+            drawable.setCallback(last.get());
+            drawable.setVisible(last.mVisible, false);
+            return false;
+        }
+
+        return false;
+    }
+
+    /**
+     * 设置宿主的可见性。若Drawable被多个宿主共享，则只要有一个宿主可见，Drawable就可见。
+     *
+     * @see Drawable#setVisible(boolean, boolean)
+     */
+    static void setVisible(@NonNull Drawable drawable, @NonNull Drawable.Callback host,
+                           boolean visible, boolean restart) {
+        final Drawable.Callback callback = drawable.getCallback();
+        if (callback instanceof SharedDrawableCallback) {
+            SharedDrawableCallback shared = (SharedDrawableCallback) callback;
+            shared.setHostVisible(host, visible);
+            // 共享的动画不因某个宿主重新可见而重新开始。
+            drawable.setVisible(shared.isAnyHostVisible(), false);
+        } else if (callback == host || callback == null) {
+            drawable.setVisible(visible, restart);
+        }
+    }
+
+    private void addHost(Drawable.Callback host, boolean visible) {
+        if (indexOfHost(host) < 0) {
+            mHosts.add(new Host(host, visible));
+        }
+    }
+
+    private void removeHost(Drawable.Callback host) {
+        int index = indexOfHost(host);
+        if (index >= 0) {
+            mHosts.remove(index);
+        }
+    }
+
+    private void removeStaleHosts() {
+        final List<Host> hosts = mHosts;
+        for (int i = hosts.size() - 1; i >= 0; i--) {
+            if (hosts.get(i).get() == null) {
+                hosts.remove(i);
+            }
+        }
+    }
+
+    private void setHostVisible(Drawable.Callback host, boolean visible) {
+        int index = indexOfHost(host);
+        if (index >= 0) {
+            mHosts.get(index).mVisible = visible;
+        }
+    }
+
+    private int indexOfHost(Drawable.Callback host) {
+        final List<Host> hosts = mHosts;
+        for (int i = hosts.size() - 1; i >= 0; i--) {
+            Drawable.Callback callback = hosts.get(i).get();
+            if (callback == null) {
+                hosts.remove(i);
+            } else if (callback == host) {
+                return i;
+            }
+        }
+
+        return -1;
+    }
+
+    private boolean isAnyHostVisible() {
+        final List<Host> hosts = mHosts;
+        for (int i = 0; i < hosts.size(); i++) {
+            Host host = hosts.get(i);
+            if (host.mVisible && host.get() != null) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    @Override
+    public void invalidateDrawable(@NonNull Drawable who) {
+        final List<Host> hosts = mHosts;
+        for (int i = 0; i < hosts.size(); i++) {
+            Drawable.Callback callback = hosts.get(i).get();
+            if (callback != null) {
+                callback.invalidateDrawable(who);
+            }
+        }
+    }
+
+    @Override
+    public void scheduleDrawable(@NonNull Drawable who, @NonNull Runnable what, long when) {
+        // 动画的下一帧只需要调度一次，优先交给已添加到窗口的宿主。
+        Drawable.Callback scheduler = null;
+        final List<Host> hosts = mHosts;
+        for (int i = 0; i < hosts.size(); i++) {
+            Drawable.Callback callback = hosts.get(i).get();
+            if (callback == null) {
+                continue;
+            }
+            if (!(callback instanceof View) || ((View) callback).getWindowToken() != null) {
+                scheduler = callback;
+                break;
+            }
+            if (scheduler == null) {
+                scheduler = callback;
+            }
+        }
+
+        if (scheduler != null) {
+            scheduler.scheduleDrawable(who, what, when);
+        }
+    }
+
+    @Override
+    public void unscheduleDrawable(@NonNull Drawable who, @NonNull Runnable what) {
+        final List<Host> hosts = mHosts;
+        for (int i = 0; i < hosts.size(); i++) {
+            Drawable.Callback callback = hosts.get(i).get();
+            if (callback != null) {
+                callback.unscheduleDrawable(who, what);
+            }
+        }
+    }
+
+    private static class Host extends WeakReference<Drawable.Callback> {
+        boolean mVisible;
+
+        Host(Drawable.Callback callback, boolean visible) {
+            super(callback);
+            mVisible = visible;
+        }
+    }
+
+}
@@ -0,0 +1,268 @@
+package cn.yiiguxing.compositionavatar;
+
+import android.app.Activity;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.graphics.Path;
+import android.graphics.Rect;
+import android.graphics.drawable.ColorDrawable;
+import android.view.View;
+
+import cn.yiiguxing.compositionavatar.CompositionAvatarView.FitType;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+import org.robolectric.shadows.ShadowLooper;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * 统计每一帧的绘制操作数，防止绘制开销退化。
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 23)
+public class CompositionAvatarViewDrawOpsTest {
+
+    private static final int VIEW_SIZE = 100;
+    private static final float[] GAPS = {0f, CompositionAvatarView.DEFAULT_GAP, 1f};
+
+    @Test
+    public void layerPathOps() {
+        for (int n = 1; n <= CompositionAvatarView.MAX_DRAWABLE_COUNT; n++) {
+            for (float gap : GAPS) {
+                for (FitType fitType : FitType.values()) {
+                    String name = describe(n, gap, fitType);
+                    CountingDrawable[] drawables = createDrawables(n);
+                    CompositionAvatarView view = createView(gap, fitType, drawables);
+
+                    RecordingCanvas canvas = new RecordingCanvas();
+                    view.onDraw(canvas);
+
+                    assertEquals(name + " saveLayer", n, canvas.mSaveLayerCount);
+                    assertEquals(name + " drawPath", n, canvas.mDrawPathCount);
+                    assertEquals(name + " drawCircle", expectedGapCount(n, gap),
+                            canvas.mDrawCircleCount);
+                    assertEquals(name + " drawBitmap", 0, canvas.mDrawBitmapCount);
+                    assertEquals(name + " Drawable.draw", n, totalDrawCount(drawables));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void cachedPathOps() {
+        for (int n = 1; n <= CompositionAvatarView.MAX_DRAWABLE_COUNT; n++) {
+            for (float gap : GAPS) {
+                for (FitType fitType : FitType.values()) {
+                    String name = describe(n, gap, fitType);
+                    CountingDrawable[] drawables = createDrawables(n);
+                    CompositionAvatarView view = createView(gap, fitType, drawables);
+                    view.setDrawableCacheEnabled(true);
+
+                    // 第一帧生成缓存：每个drawable绘制一次，但不在View的画布上使用图层。
+                    RecordingCanvas canvas = new RecordingCanvas();
+                    view.onDraw(canvas);
+                    assertEquals(name + " saveLayer", 0, canvas.mSaveLayerCount);
+                    assertEquals(name + " drawPath", 0, canvas.mDrawPathCount);
+                    assertEquals(name + " drawCircle", 0, canvas.mDrawCircleCount);
+                    assertEquals(name + " drawBitmap", n, canvas.mDrawBitmapCount);
+                    assertEquals(name + " Drawable.draw", n, totalDrawCount(drawables));
+
+                    // 之后的帧只绘制缓存位图。
+                    resetDrawCounts(drawables);
+                    canvas = new RecordingCanvas();
+                    view.onDraw(canvas);
+                    assertEquals(name + " saveLayer", 0, canvas.mSaveLayerCount);
+                    assertEquals(name + " drawBitmap", n, canvas.mDrawBitmapCount);
+                    assertEquals(name + " Drawable.draw", 0, totalDrawCount(drawables));
+
+                    // 间距改变后重新生成缓存。
+                    view.setGap(gap == 1f ? 0f : 1f);
+                    view.onDraw(new RecordingCanvas());
+                    assertEquals(name + " Drawable.draw after setGap", n,
+                            totalDrawCount(drawables));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void transitionOps() {
+        final Activity activity = Robolectric.setupActivity(Activity.class);
+        // 不推进动画，使其停留在第一帧。
+        ShadowLooper.pauseMainLooper();
+        for (float gap : GAPS) {
+            for (boolean cacheEnabled : new boolean[]{false, true}) {
+                String name = "gap=" + gap + ", cache=" + cacheEnabled + ":";
+                CountingDrawable[] drawables = createDrawables(3);
+                CompositionAvatarView view = createView(gap, FitType.CENTER, drawables);
+                view.setDrawableCacheEnabled(cacheEnabled);
+                view.setTransitionEnabled(true);
+                // 过渡动画只在View显示时启用。
+                activity.setContentView(view);
+
+                view.removeDrawableAt(0);
+                resetDrawCounts(drawables);
+
+                // 剩下的两个图像移动到新的位置，被移除的图像在原位置缩小，都不使用缓存。
+                RecordingCanvas canvas = new RecordingCanvas();
+                view.onDraw(canvas);
+                assertEquals(name + " saveLayer", 3, canvas.mSaveLayerCount);
+                assertEquals(name + " drawPath", 3, canvas.mDrawPathCount);
+                assertEquals(name + " drawCircle", expectedGapCount(2, gap),
+                        canvas.mDrawCircleCount);
+                assertEquals(name + " drawBitmap", 0, canvas.mDrawBitmapCount);
+                assertEquals(name + " Drawable.draw", 3, totalDrawCount(drawables));
+            }
+        }
+    }
+
+    @Test
+    public void sharedDrawableBoundsAreNotResetByOtherViews() {
+        CountingDrawable shared = new CountingDrawable(200, 100);
+        CompositionAvatarView first = createView(CompositionAvatarView.DEFAULT_GAP,
+                FitType.CENTER, shared);
+        Rect bounds = new Rect(shared.getBounds());
+        int boundsChanges = shared.mBoundsChangeCount;
+
+        CompositionAvatarView second = new CompositionAvatarView(RuntimeEnvironment.application);
+        second.addDrawable(shared);
+        second.addDrawable(new CountingDrawable(100, 100));
+        layout(second, VIEW_SIZE / 2);
+
+        assertEquals(bounds, shared.getBounds());
+        assertEquals(boundsChanges, shared.mBoundsChangeCount);
+
+        // 两个View各自绘制一次，都不会修改共享drawable的边界。
+        first.onDraw(new RecordingCanvas());
+        second.onDraw(new RecordingCanvas());
+        assertEquals(2, shared.mDrawCount);
+        assertEquals(boundsChanges, shared.mBoundsChangeCount);
+    }
+
+    private static String describe(int n, float gap, FitType fitType) {
+        return "N=" + n + ", gap=" + gap + ", fitType=" + fitType + ":";
+    }
+
+    private static int expectedGapCount(int n, float gap) {
+        if (gap <= 0f || n == 1) {
+            return 0;
+        }
+        return n == 2 ? 1 : n;
+    }
+
+    private static CountingDrawable[] createDrawables(int n) {
+        CountingDrawable[] drawables = new CountingDrawable[n];
+        for (int i = 0; i < n; i++) {
+            // 宽高不同，使各种FitType得到不同的边界。
+            drawables[i] = new CountingDrawable(200 + i * 10, 100);
+        }
+        return drawables;
+    }
+
+    private static CompositionAvatarView createView(float gap,
+                                                    FitType fitType,
+                                                    CountingDrawable... drawables) {
+        CompositionAvatarView view = new CompositionAvatarView(RuntimeEnvironment.application);
+        view.setGap(gap);
+        view.setDrawableFitType(fitType);
+        for (CountingDrawable drawable : drawables) {
+            view.addDrawable(drawable);
+        }
+        layout(view, VIEW_SIZE);
+        return view;
+    }
+
+    private static void layout(View view, int size) {
+        int spec = View.MeasureSpec.makeMeasureSpec(size, View.MeasureSpec.EXACTLY);
+        view.measure(spec, spec);
+        view.layout(0, 0, size, size);
+    }
+
+    private static int totalDrawCount(CountingDrawable[] drawables) {
+        int count = 0;
+        for (CountingDrawable drawable : drawables) {
+            count += drawable.mDrawCount;
+        }
+        return count;
+    }
+
+    private static void resetDrawCounts(CountingDrawable[] drawables) {
+        for (CountingDrawable drawable : drawables) {
+            drawable.mDrawCount = 0;
+        }
+    }
+
+    private static class CountingDrawable extends ColorDrawable {
+        private final int mWidth;
+        private final int mHeight;
+        int mDrawCount;
+        int mBoundsChangeCount;
+
+        CountingDrawable(int width, int height) {
+            super(Color.RED);
+            mWidth = width;
+            mHeight = height;
+        }
+
+        @Override
+        public void draw(Canvas canvas) {
+            mDrawCount++;
+        }
+
+        @Override
+        protected void onBoundsChange(Rect bounds) {
+            super.onBoundsChange(bounds);
+            mBoundsChangeCount++;
+        }
+
+        @Override
+        public int getIntrinsicWidth() {
+            return mWidth;
+        }
+
+        @Override
+        public int getIntrinsicHeight() {
+            return mHeight;
+        }
+    }
+
+    /**
+     * 只记录绘制操作而不实际绘制的画布。
+     */
+    private static class RecordingCanvas extends Canvas {
+        int mSaveLayerCount;
+        int mDrawPathCount;
+        int mDrawCircleCount;
+        int mDrawBitmapCount;
+
+        @Override
+        public int saveLayer(float left, float top, float right, float bottom, Paint paint,
+                             int saveFlags) {
+            mSaveLayerCount++;
+            return save();
+        }
+
+        @Override
+        public void drawPath(Path path, Paint paint) {
+            mDrawPathCount++;
+        }
+
+        @Override
+        public void drawCircle(float cx, float cy, float radius, Paint paint) {
+            mDrawCircleCount++;
+        }
+
+        @Override
+        public void drawBitmap(Bitmap bitmap, float left, float top, Paint paint) {
+            mDrawBitmapCount++;
+        }
+    }
+
+}